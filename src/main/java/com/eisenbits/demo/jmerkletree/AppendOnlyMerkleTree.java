@@ -0,0 +1,356 @@
+package com.eisenbits.demo.jmerkletree;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Append-only Merkle tree that keeps only the rightmost frontier of the tree.
+ *
+ * For every set bit k of the number of complete data blocks, the hash of the corresponding
+ * complete subtree of 2^k leaves is kept; everything else is forgotten once hashed. The payload
+ * of the last (still growing) data block is kept until the block is full. An append costs
+ * amortized O(1) inner hashes and the memory use is O(log n) hashes.
+ *
+ * Given the same block size and the same sequence of appended bytes, the root hash is the
+ * same as that of MerkleTree. Optionally the leaf hashes (and the hashes of all the complete
+ * subtrees, about twice as many) can be kept as well, in which case consistency proofs between
+ * two tree sizes can be produced with O(log n) hash lookups.
+ *
+ * NOTE: only roots taken at a block boundary (i.e. when the last data block was complete) can
+ * be proven consistent with a later tree. A root taken while the last block was incomplete
+ * covers a leaf that changes as the block grows, so it is not a prefix of any later tree.
+ */
+public class AppendOnlyMerkleTree {
+
+  private static final Logger log = Logger.getLogger(AppendOnlyMerkleTree.class.getName());
+  private MessageDigest digest;
+
+  private final int BlockSize;
+
+  /**
+   * frontier[k] is the hash of the complete subtree of 2^k leaves if bit k of fullBlocks
+   * is set, null otherwise. The subtrees are ordered right to left with increasing k.
+   */
+  private final byte[][] frontier = new byte[Integer.SIZE][];
+
+  /** Number of complete data blocks (folded into the frontier). */
+  private int fullBlocks = 0;
+
+  /** Payload of the last, incomplete data block (if any). */
+  private byte[] tail = null;
+
+  /** Binary root hash, cached until the next append (null if not computed yet). */
+  private byte[] rootCache = null;
+
+  /** Hex encoding of the root hash, cached until the next append (null if not computed yet). */
+  private String rootHashHex = null;
+
+  /**
+   * subtrees.get(k).get(i) is the hash of the complete subtree of 2^k leaves starting at
+   * leaf i*2^k (level 0 are the complete data blocks), or null if the leaf hashes are not kept.
+   */
+  private final ArrayList<ArrayList<byte[]>> subtrees;
+
+  /** Returns the total number of leaves (aka data blocks) stored in this tree. */
+  public int leafCount() {
+    return fullBlocks + ((null == tail) ? 0 : 1);
+  }
+
+  public boolean isEmpty() {
+    return (0 == leafCount());
+  }
+
+  private static byte[] leafHash(MessageDigest digest, byte[] data, int offset, int length) {
+    digest.update((byte) 0x0);
+    digest.update(data, offset, length);
+    return digest.digest();
+  }
+
+  private static byte[] innerHash(MessageDigest digest, byte[] lc, byte[] rc) {
+    digest.update((byte) 0x1);
+    digest.update(lc);
+    digest.update((byte) 0x1);
+    digest.update(rc);
+    return digest.digest();
+  }
+
+  /**
+   * Merges a complete subtree of 2^k leaves into the frontier, as the next subtree to the right.
+   * The number of leaves in the frontier must be a multiple of 2^k.
+   *
+   * @param subtrees if not null, the bigger complete subtrees created by merging get recorded here
+   */
+  private static void pushSubtree(MessageDigest digest, byte[][] frontier, int k, byte[] hash,
+                                  ArrayList<ArrayList<byte[]>> subtrees) {
+    for (; null != frontier[k]; ++k) {
+      hash = innerHash(digest, frontier[k], hash);
+      frontier[k] = null;
+      if (null != subtrees)
+        recordSubtree(subtrees, k+1, hash);
+    }
+    frontier[k] = hash;
+  }
+
+  private static void recordSubtree(ArrayList<ArrayList<byte[]>> subtrees, int k, byte[] hash) {
+    while (subtrees.size() <= k)
+      subtrees.add(new ArrayList<>());
+    subtrees.get(k).add(hash);
+  }
+
+  /**
+   * Computes the root hash of the tree made of the frontier subtrees and an optional extra
+   * (last) leaf, in the same way MerkleTree does: whenever a node has no right child,
+   * its left child gets repeated.
+   *
+   * @param count number of leaves in the frontier
+   * @param extra hash of an extra last leaf, or null
+   */
+  private static byte[] rootOf(MessageDigest digest, byte[][] frontier, int count, byte[] extra) {
+    final int n = count + ((null == extra) ? 0 : 1);
+    if (n <= 0)
+      throw new IllegalStateException("Tree is empty!");
+
+    // cur is the rightmost incomplete node at level k (if any)
+    byte[] cur = extra;
+    int k = 0;
+    for (; 0 < ((n - 1) >> k); ++k) {
+      final byte[] f = frontier[k];
+      if (null != f)
+        cur = innerHash(digest, f, ((null == cur) ? f : cur));
+      else if (null != cur)
+        cur = innerHash(digest, cur, cur);
+    }
+    return ((null == cur) ? frontier[k] : cur);
+  }
+
+  /** Returns the binary root hash (cached). */
+  private byte[] root() {
+    if (null == rootCache) {
+      final byte[] extra = ((null == tail) ? null : leafHash(digest, tail, 0, tail.length));
+      rootCache = rootOf(digest, frontier, fullBlocks, extra);
+    }
+    return rootCache;
+  }
+
+  public String rootHash() {
+    if (isEmpty())
+      throw new IllegalStateException("Tree is empty!");
+    if (null == rootHashHex)
+      rootHashHex = Hex.encodeHexString(root());
+    return rootHashHex;
+  }
+
+  /**
+   * Writes the binary root hash into the given buffer.
+   *
+   * @return the number of bytes written (the hash length)
+   */
+  public int rootHash(byte[] dst, int off) {
+    if (isEmpty())
+      throw new IllegalStateException("Tree is empty!");
+    return MerkleTree.copyHash(root(), dst, off);
+  }
+
+  /** Hashes a complete data block and merges it into the frontier. */
+  private void pushBlock(byte[] data, int offset) {
+    final byte[] hash = leafHash(digest, data, offset, BlockSize);
+    if (log.isLoggable(Level.FINE))
+      log.fine(Hex.encodeHexString(hash));
+    if (null != subtrees)
+      recordSubtree(subtrees, 0, hash);
+    pushSubtree(digest, frontier, 0, hash, subtrees);
+    ++fullBlocks;
+  }
+
+  /** Modifies the tree by inserting the given data chunk at the end. */
+  public void append(byte[] data) {
+    if (log.isLoggable(Level.INFO))
+      log.info("data.length=" + data.length);
+    if (0 == data.length)
+      return;
+
+    // final number of data blocks (after append), checked before anything gets modified
+    final long allBytes = ((null == tail) ? 0 : tail.length) + (long) data.length;
+    final long allBlocks = fullBlocks + (allBytes + BlockSize - 1) / BlockSize;
+    if (MerkleTree.MaxBlocks < allBlocks)
+      throw new IllegalArgumentException("Max blocks limit (" + MerkleTree.MaxBlocks + ") exceeded!");
+
+    this.rootCache = null;
+    this.rootHashHex = null;
+    int offset = 0;
+
+    if (null != tail) {
+      // fill up the last block first
+      final int n = Math.min(data.length, BlockSize - tail.length);
+      final int psz = tail.length;
+      tail = Arrays.copyOf(tail, psz + n);
+      System.arraycopy(data, 0, tail, psz, n);
+      offset = n;
+
+      if (BlockSize == tail.length) {
+        pushBlock(tail, 0);
+        tail = null;
+      }
+    }
+
+    // complete blocks are hashed directly from the input
+    for (; offset + BlockSize <= data.length; offset += BlockSize)
+      pushBlock(data, offset);
+
+    if (offset < data.length)
+      tail = Arrays.copyOfRange(data, offset, data.length);
+  }
+
+  /**
+   * Returns the hash of the complete subtree of 2^k leaves starting at the given 0-based leaf
+   * index (requires the leaf hashes to be kept). Subtrees made of complete data blocks are looked
+   * up; only a subtree ending with the last, incomplete block gets hashed along its right spine.
+   */
+  private byte[] subtreeHash(int index0, int k) {
+    if (index0 + (1 << k) <= fullBlocks) {
+      final byte[] hash = subtrees.get(k).get(index0 >>> k);
+      return Arrays.copyOf(hash, hash.length);
+    }
+    if (0 == k)
+      return leafHash(digest, tail, 0, tail.length);
+    final int half = 1 << (k-1);
+    return innerHash(digest, subtreeHash(index0, k-1), subtreeHash(index0 + half, k-1));
+  }
+
+  /** Returns the largest k such that a complete subtree of 2^k leaves starts at pos and ends at or before end. */
+  private static int alignedBlock(int pos, int end) {
+    int k = Integer.numberOfTrailingZeros(pos);
+    while ((end - pos) < (1 << k))
+      --k;
+    return k;
+  }
+
+  /**
+   * Produces a proof that the tree of the first oldSize leaves is a prefix of this tree.
+   *
+   * The proof consists of the frontier of the old tree (ordered with increasing subtree size),
+   * followed by the hashes of the aligned complete subtrees covering the remaining leaves
+   * (ordered left to right). Leaf hashes must be kept in order to produce proofs.
+   *
+   * The old tree is the one made of the first oldSize leaves of this tree, so the proof only
+   * verifies against an old root taken when its last data block was complete (see the class
+   * comment). An old root taken with an incomplete last block does not verify.
+   *
+   * @param oldSize must be between 1 (inclusive) and leafCount() (inclusive)
+   */
+  public List<byte[]> consistencyProof(int oldSize) {
+    log.info("oldSize=" + oldSize + " leafCount=" + leafCount());
+    if (null == subtrees)
+      throw new IllegalStateException("Leaf hashes are not kept, cannot produce consistency proofs");
+    if ((oldSize < 1) || (leafCount() < oldSize))
+      throw new IllegalArgumentException("Old size (" + oldSize + ") out of bounds, must be between 1 (inclusive) and " + leafCount() + " (inclusive)");
+
+    final ArrayList<byte[]> proof = new ArrayList<>();
+
+    // old frontier: the complete subtrees of the old tree, right to left
+    for (int k=0, end=oldSize; k < Integer.SIZE - 1; ++k) {
+      if (0 != (oldSize & (1 << k))) {
+        end -= (1 << k);
+        proof.add(subtreeHash(end, k));
+      }
+    }
+
+    // the appended leaves, left to right
+    for (int pos=oldSize; pos < leafCount(); ) {
+      final int k = alignedBlock(pos, leafCount());
+      proof.add(subtreeHash(pos, k));
+      pos += (1 << k);
+    }
+
+    return proof;
+  }
+
+  /**
+   * Verifies a consistency proof produced by consistencyProof(oldSize) on a tree of newSize leaves.
+   *
+   * @return true if the tree of oldSize leaves with root oldRoot is a prefix of the tree of
+   *         newSize leaves with root newRoot
+   */
+  public static boolean verifyConsistency(MessageDigest digest, int oldSize, String oldRoot,
+                                          int newSize, String newRoot, List<byte[]> proof) {
+    final byte[] oldHash = MerkleTree.decodeHash(oldRoot), newHash = MerkleTree.decodeHash(newRoot);
+    return ((null != oldHash) && (null != newHash) && verifyConsistency(digest, oldSize, oldHash, newSize, newHash, proof));
+  }
+
+  /** Same as the above, with the binary root hashes (as written by rootHash(byte[],int)). */
+  public static boolean verifyConsistency(MessageDigest digest, int oldSize, byte[] oldRoot,
+                                          int newSize, byte[] newRoot, List<byte[]> proof) {
+    if ((oldSize < 1) || (newSize < oldSize))
+      return false;
+
+    final byte[][] f = new byte[Integer.SIZE][];
+    int p = 0;
+
+    // rebuild the old frontier and check the old root
+    for (int k=0; k < Integer.SIZE - 1; ++k) {
+      if (0 != (oldSize & (1 << k))) {
+        if (proof.size() <= p)
+          return false;
+        f[k] = proof.get(p++);
+      }
+    }
+    if (! MessageDigest.isEqual(oldRoot, rootOf(digest, f, oldSize, null)))
+      return false;
+
+    // merge the appended subtrees and check the new root
+    for (int pos=oldSize; pos < newSize; ) {
+      if (proof.size() <= p)
+        return false;
+      final int k = alignedBlock(pos, newSize);
+      pushSubtree(digest, f, k, proof.get(p++), null);
+      pos += (1 << k);
+    }
+    if (p != proof.size())
+      return false;
+    return MessageDigest.isEqual(newRoot, rootOf(digest, f, newSize, null));
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+
+    sb.append("AppendOnlyMerkleTree of " + leafCount() + " data blocks");
+    sb.append("; tail=" + ((null == tail) ? 0 : tail.length));
+    sb.append("; frontier: [");
+    for (int k=0; k < frontier.length; ++k)
+      if (null != frontier[k])
+        sb.append(" " + k);
+    sb.append(" ]");
+
+    if (! isEmpty())
+      sb.append("; rootHash=" + rootHash());
+
+    return sb.toString();
+  }
+
+  /**
+   * @param keepLeafHashes whether to keep the leaf and complete subtree hashes (needed for consistency proofs)
+   */
+  public AppendOnlyMerkleTree(MessageDigest digest, int blockSize, boolean keepLeafHashes) {
+    if (blockSize < 3)
+      throw new IllegalArgumentException("Maximal leaf data block size must be at least 3");
+
+    this.digest = digest;
+    this.BlockSize = blockSize;
+    this.subtrees = (keepLeafHashes ? new ArrayList<>() : null);
+
+    log.info("max block size: " + BlockSize);
+    log.info("keep leaf hashes: " + keepLeafHashes);
+    log.info("hash function: " + digest.getAlgorithm());
+  }
+
+  public AppendOnlyMerkleTree(MessageDigest digest, int blockSize) {
+    this(digest, blockSize, false);
+  }
+}
@@ -0,0 +1,63 @@
+package com.eisenbits.demo.jmerkletree;
+
+/**
+ * See NodeLayout.blocked().
+ *
+ * The levels are grouped from the leaves upwards: group j holds the levels
+ * max(0, leafLevel - height*(j+1) + 1) .. leafLevel - height*j, so only the topmost group
+ * may be lower. Every subtree of a group (a block) is stored contiguously. The groups are
+ * stored from the root downwards; all but the bottom one are full, so a group starting on
+ * level top starts at slot 2^top. The bottom group only needs the blocks up to the one
+ * holding the last leaf.
+ */
+class BlockedNodeLayout implements NodeLayout {
+
+  /** Block height (number of tree levels in a group). */
+  private final int height;
+
+  BlockedNodeLayout(int height) {
+    if ((height < 1) || (15 < height))
+      throw new IllegalArgumentException("Block height (" + height + ") must be between 1 and 15");
+    this.height = height;
+  }
+
+  private long slotl(int index1, int leafLevel) {
+    final int level  = (Integer.SIZE - 1) - Integer.numberOfLeadingZeros(index1);
+    final int offset = index1 - (1 << level);                             // offset within the tree level
+    final int bottom = leafLevel - height * ((leafLevel - level) / height); // bottom level of the group
+    final int top    = Math.max(0, bottom - height + 1);                  // top level of the group
+    final int blevel = level - top;                                       // level within the block
+
+    final long block = (offset >>> blevel);
+    final long blockSize = (1L << (bottom - top + 1)) - 1;
+    final int  local = (1 << blevel) + (offset & ((1 << blevel) - 1)) - 1;  // 0-based, within the block
+    return (1L << top) + block * blockSize + local;
+  }
+
+  @Override
+  public int slot(int index1, int leafLevel) {
+    return (int) slotl(index1, leafLevel);
+  }
+
+  @Override
+  public int slotCount(int nodeCount, int leafLevel) {
+    if (nodeCount <= 0)
+      return 1;
+
+    // The rightmost nodes of all levels are the ancestors of the last leaf, so the last block
+    // in use is the one of the last leaf.
+    final int top = Math.max(0, leafLevel - height + 1);
+    final long blockSize = (1L << (leafLevel - top + 1)) - 1;
+    final long lastBlock = (nodeCount - (1 << leafLevel)) >>> (leafLevel - top);
+    final long res = (1L << top) + (lastBlock + 1) * blockSize;
+
+    if (Integer.MAX_VALUE - 8 < res)
+      throw new IllegalArgumentException("Too many nodes (" + nodeCount + ") for the " + this);
+    return (int) res;
+  }
+
+  @Override
+  public String toString() {
+    return "blocked(" + height + ") layout";
+  }
+}
@@ -3,9 +3,12 @@ package com.eisenbits.demo.jmerkletree;
 import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Hex;
 
 /**
@@ -65,19 +68,48 @@ public class MerkleTree {
    * A 1-based array containing all the leaves and internal nodes together.
    * The first slot is empty (null).
    *
-   * For a detailed description: https://en.wikipedia.org/wiki/Binary_tree#Arrays .
+   * The nodes are addressed by their 1-based breadth-first indexes; the layout maps these
+   * to the actual slots. For a detailed description of the indexes:
+   * https://en.wikipedia.org/wiki/Binary_tree#Arrays .
    */
   private ArrayList<Node> nodes = new ArrayList<>();
 
-  /** A 0-based array containing all the data blocks, corresponding 1-1 to the leaves. */
+  /** Placement of the nodes in the nodes array. */
+  private final NodeLayout layout;
+
+  /** Total number of nodes (not including the empty slot). */
+  private int nodeCount = 0;
+
+  /**
+   * The leaf level the nodes array is currently laid out for. This is leafrowp, except
+   * in displaced root mode, where it is already the new leaf level.
+   */
+  private int layoutLeafRow = 0;
+
+  /**
+   * A 0-based array containing all the data blocks, corresponding 1-1 to the leaves.
+   * Empty in hash-only mode.
+   */
   private ArrayList<DataBlock> datablocks = new ArrayList<>();
 
+  /** The last data block (if any). Kept in hash-only mode too, because it can still grow. */
+  private DataBlock lastBlock = null;
+
+  /** Total number of data blocks. */
+  private int blockCount = 0;
+
+  /** If false (hash-only mode), payloads are discarded once hashed, except for the last data block. */
+  private final boolean keepPayloads;
+
   /**
    * Pointer to the level of leaves in the nodes array, as power of 2, starting with 0.
    * The leaves are stored at: nodes[pow2[leafrowp]..pow2[leafrowp]+leafCount()-1].
    */
   private int leafrowp = 0;
 
+  /** Hex encoding of the root hash, cached until the next modification (null if not computed yet). */
+  private String rootHashHex = null;
+
   /** Powers of 2: pow2[k] == 2^k . */
   private static final int[] pow2;
 
@@ -118,7 +150,14 @@ public class MerkleTree {
 
   /** Given a 1-based node index, returns the node. */
   private Node node(int index1) {
-    return nodes.get(index1);
+    // nodes beyond the right edge of the tree may have no slot at all
+    final int slot = layout.slot(index1, layoutLeafRow);
+    return ((slot < nodes.size()) ? nodes.get(slot) : null);
+  }
+
+  /** Given a 1-based node index, sets the node. */
+  private void setNode(int index1, Node nd) {
+    nodes.set(layout.slot(index1, layoutLeafRow), nd);
   }
 
   /** 0-based leaf index to 1-based node index */
@@ -128,16 +167,16 @@ public class MerkleTree {
 
   /** Returns the total number of leaves (aka data blocks) stored in this tree. */
   public int leafCount() {
-    return datablocks.size();
+    return blockCount;
   }
 
   /** Returns the total number of nodes in this tree (not including the empty slot). */
   private int nodeCount() {
-    return nodes.size() - 1;  // 1st slot is empty
+    return nodeCount;
   }
 
   public boolean isEmpty() {
-    return datablocks.isEmpty();
+    return (0 == blockCount);
   }
 
   /**
@@ -147,17 +186,22 @@ public class MerkleTree {
    * @param newNodeCount new number of nodes (not including the empty slot)
    */
   private void resizeNodes(int newNodeCount) {
-    log.fine("newNodeCount=" + newNodeCount + ", nodes.size=" + nodes.size());
-    if (nodes.size() < newNodeCount + 1) {
-      nodes.ensureCapacity(newNodeCount + 1);
-      nodes.addAll(Arrays.asList(Arrays.copyOf(new Node[0], newNodeCount + 1 - nodes.size())));
+    if (log.isLoggable(Level.FINE))
+      log.fine("newNodeCount=" + newNodeCount + ", nodes.size=" + nodes.size());
+    final int newSlotCount = layout.slotCount(newNodeCount, layoutLeafRow);
+    if (nodes.size() < newSlotCount) {
+      nodes.ensureCapacity(newSlotCount);
+      nodes.addAll(Arrays.asList(Arrays.copyOf(new Node[0], newSlotCount - nodes.size())));
     }
+    nodeCount = Math.max(nodeCount, newNodeCount);
   }
 
   /**
    * Resizes the nodes array and moves the existing nodes downwards (and leftwards)
    * in order to make space for the new part of the tree (possibly bigger).
    *
+   * The nodes get laid out for the new leaf level, in a new nodes array.
+   *
    * This leaves the nodes array in an inconsistent state (displaced root)!
    *
    * @param newLeafCount new number of leaves
@@ -167,46 +211,132 @@ public class MerkleTree {
     final int newNodeCount  = pow2[newLeafRowPtr] + newLeafCount - 1; // new total number of nodes (not including the empty slot)
     final int hdiff = newLeafRowPtr - leafrowp;
 
-    log.fine("leafCount=" + leafCount() + " leafrowp=" + leafrowp + " newNodeCount=" + newNodeCount +
-             " newLeafCount=" + newLeafCount + " newLeafRowPtr=" + newLeafRowPtr + " hdiff=" + hdiff);
+    if (log.isLoggable(Level.FINE))
+      log.fine("leafCount=" + leafCount() + " leafrowp=" + leafrowp + " newNodeCount=" + newNodeCount +
+               " newLeafCount=" + newLeafCount + " newLeafRowPtr=" + newLeafRowPtr + " hdiff=" + hdiff);
+
+    final ArrayList<Node> oldNodes = nodes;
+    final int oldNodeCount = nodeCount;
+    final int oldLeafRow = layoutLeafRow;
+
+    this.nodes = new ArrayList<>();
+    this.nodes.add(null); // 1st slot is empty
+    this.nodeCount = 0;
+    this.layoutLeafRow = newLeafRowPtr;
     resizeNodes(newNodeCount);
 
     // iterate over the tree levels from bottom to top, moving them downwards (and leftwards)
     for (int level=leafrowp; 0 <= level; --level) {
       // move the entire level of nodes downwards (and leftwards)
-      log.fine("move row " + level + " downwards to " + (level+hdiff));
-      for (int i=0; (i < pow2[level]) && (null != nodes.get(pow2[level] + i)); ++i) {
+      if (log.isLoggable(Level.FINE))
+        log.fine("move row " + level + " downwards to " + (level+hdiff));
+      for (int i=0; (i < pow2[level]) && (pow2[level] + i <= oldNodeCount); ++i) {
         final int j = pow2[level] + i;
         final int k = pow2[level+hdiff] + i;
-        log.fine("move node " + j + " to " + k);
-        nodes.set(k, nodes.get(j));
-        nodes.set(j, null);
+        final int oldSlot = layout.slot(j, oldLeafRow);
+        final Node nd = ((oldSlot < oldNodes.size()) ? oldNodes.get(oldSlot) : null);
+        if (null == nd)
+          break;
+        if (log.isLoggable(Level.FINE))
+          log.fine("move node " + j + " to " + k);
+        setNode(k, nd);
       }
     }
   }
 
   public String rootHash() {
-    if ((null == nodes) || (nodes.size() <= 1) || (null == nodes.get(1)))
+    if ((nodeCount() < 1) || (null == node(1)))
+      throw new IllegalStateException("Tree is empty!");
+    if (null == rootHashHex)
+      rootHashHex = Hex.encodeHexString(node(1).hashval);
+    return rootHashHex;
+  }
+
+  /**
+   * Writes the binary root hash into the given buffer.
+   *
+   * @return the number of bytes written (the hash length)
+   */
+  public int rootHash(byte[] dst, int off) {
+    if ((nodeCount() < 1) || (null == node(1)))
       throw new IllegalStateException("Tree is empty!");
-    return Hex.encodeHexString(nodes.get(1).hashval);
+    return copyHash(node(1).hashval, dst, off);
+  }
+
+  /** Returns the length of the hash values (in bytes). */
+  public int hashLength() {
+    return digest.getDigestLength();
+  }
+
+  /** Copies the given hash value into dst at off and returns its length. */
+  static int copyHash(byte[] hash, byte[] dst, int off) {
+    if ((off < 0) || (dst.length - off < hash.length))
+      throw new IllegalArgumentException("Buffer too small: " + hash.length + " bytes needed at offset " + off + ", buffer length is " + dst.length);
+    System.arraycopy(hash, 0, dst, off, hash.length);
+    return hash.length;
+  }
+
+  /**
+   * Returns the number of tree levels: the root is on level 0 and the leaves are
+   * on level levelCount()-1.
+   */
+  public int levelCount() {
+    return (isEmpty() ? 0 : (leafrowp + 1));
+  }
+
+  /**
+   * Returns the number of nodes on the given level.
+   *
+   * @param level must be between 0 (inclusive) and levelCount() (exclusive)
+   */
+  public int levelSize(int level) {
+    if ((level < 0) || (levelCount() <= level))
+      throw new IllegalArgumentException("Level (" + level + ") out of bounds, must be between 0 (inclusive) and " + levelCount() + " (exclusive)");
+    // every node covers 2^(leafrowp-level) leaves, except possibly the last one
+    final int shift = leafrowp - level;
+    return ((leafCount() - 1) >> shift) + 1;
+  }
+
+  /**
+   * Writes the hash values of all the nodes on the given level, left to right, into the given
+   * buffer as contiguous bytes.
+   *
+   * @param level must be between 0 (inclusive) and levelCount() (exclusive)
+   * @return the number of bytes written: levelSize(level) * hashLength()
+   */
+  public int exportLevel(int level, byte[] dst, int off) {
+    final int size = levelSize(level);
+    final int hlen = node(1).hashval.length;
+    if ((off < 0) || ((dst.length - off) / hlen < size))
+      throw new IllegalArgumentException("Buffer too small: " + size + "*" + hlen + " bytes needed at offset " + off + ", buffer length is " + dst.length);
+
+    int pos = off;
+    for (int i=0; i < size; ++i)
+      pos += copyHash(node(pow2[level] + i).hashval, dst, pos);
+    return pos - off;
   }
 
   private byte[] mkhash() {
     byte[] res = digest.digest();
-    log.fine(Hex.encodeHexString(res));
+    if (log.isLoggable(Level.FINE))
+      log.fine(Hex.encodeHexString(res));
     return res;
   }
 
-  private byte[] leafHash(byte[] data) {
+  private byte[] leafHash(byte[] data, int offset, int length) {
     digest.update((byte) 0x0);
-    digest.update(data);
+    digest.update(data, offset, length);
     return mkhash();
   }
 
-  /** Given a 0-based leaf index, updates its hash value. */
-  private void recomputeLeafHash(int index0, boolean fixup) {
+  private byte[] leafHash(byte[] data) {
+    return leafHash(data, 0, data.length);
+  }
+
+  /** Given a 0-based leaf index and its payload, updates its hash value. */
+  private void recomputeLeafHash(int index0, byte[] payload, boolean fixup) {
     final int index1 = leaf2node(index0);
-    node(index1).hashval = leafHash(datablocks.get(index0).payload);
+    node(index1).hashval = leafHash(payload);
     if (fixup)
       fixUp(index1);
   }
@@ -217,11 +347,12 @@ public class MerkleTree {
    * NOTE: this can be called in displaced root mode.
    */
   private void recomputeInnerNodeHash(int index1) {
-    log.fine("" + index1);
+    if (log.isLoggable(Level.FINE))
+      log.fine("" + index1);
 
     Node nd = node(index1);
     Node lc = node(lci(index1));
-    Node rc = ((rci(index1) < nodes.size()) ? node(rci(index1)) : null);
+    Node rc = ((rci(index1) <= nodeCount()) ? node(rci(index1)) : null);
 
     // This apparently does the right thing (hash of the concatenation)
     digest.update((byte) 0x1);
@@ -247,8 +378,9 @@ public class MerkleTree {
    * @param   toIndex1   end index (exclusive)
    */
   private void fixUpMultiple(int fromIndex1, int toIndex1) {
-    log.fine(fromIndex1 + " .. " + toIndex1);
-    if (toIndex1 <= fromIndex1)
+    if (log.isLoggable(Level.FINE))
+      log.fine(fromIndex1 + " .. " + toIndex1);
+    if ((toIndex1 <= fromIndex1) || (toIndex1 <= 1))
       return;
 
     for (int i=fromIndex1; i < toIndex1; ++i) {
@@ -256,11 +388,12 @@ public class MerkleTree {
       if (pind1 <= 0)
         continue;
 
-      final Node pnode = nodes.get(pind1);
-      log.fine("i=" + i + ", pind=" + pind1 + ": " + pnode);
+      final Node pnode = node(pind1);
+      if (log.isLoggable(Level.FINE))
+        log.fine("i=" + i + ", pind=" + pind1 + ": " + pnode);
 
       if (null == pnode)
-        nodes.set(pind1, new Node());
+        setNode(pind1, new Node());
       if ((i == (2 * pind1 + 1)) || (toIndex1 == i+1)) {
           // Either i is the right child or there is no right child
           recomputeInnerNodeHash(pind1);
@@ -269,7 +402,7 @@ public class MerkleTree {
 
     // ascend one level to the root
     // recursion: not a problem with the stack size, because log2 is small enough
-    fixUpMultiple(parind(fromIndex1), parind(toIndex1));
+    fixUpMultiple(parind(fromIndex1), parind(toIndex1 - 1) + 1);
   }
 
   /**
@@ -278,16 +411,105 @@ public class MerkleTree {
    * @param index0 must be between 0 (inclusive) and leafCount() (exclusive)
    */
   public void updateLeaf(int index0, byte[] data) {
-    log.info(index0 + "; data.length=" + data.length);
+    if (log.isLoggable(Level.INFO))
+      log.info(index0 + "; data.length=" + data.length);
+    this.rootHashHex = null;
     if (BlockSize < data.length)
       throw new IllegalArgumentException("data length (" + data.length + ") is bigger than the allowed block size (" + BlockSize + ")");
     if ((index0 < 0) || (leafCount() <= index0))
       throw new IllegalArgumentException("Leaf index (" + index0 + ") out of bounds, must be between 0 (inclusive) and " + leafCount() + " (exclusive)");
 
-    // update the payload
-    datablocks.get(index0).payload = Arrays.copyOf(data, data.length);
+    // update the payload (if kept)
+    if (keepPayloads || (leafCount() - 1 == index0)) {
+      final byte[] payload = Arrays.copyOf(data, data.length);
+      if (keepPayloads)
+        datablocks.get(index0).payload = payload;
+      if (leafCount() - 1 == index0)
+        lastBlock.payload = payload;
+    }
     // update the hash and up to the root
-    recomputeLeafHash(index0, true);
+    recomputeLeafHash(index0, data, true);
+  }
+
+  /**
+   * Returns the inclusion proof of the given leaf: the hashes of the siblings on the path
+   * from the leaf up to the root, bottom-up. If a node has no right sibling, its own hash
+   * gets repeated (just like in the parent hash).
+   *
+   * @param index0 must be between 0 (inclusive) and leafCount() (exclusive)
+   */
+  public List<byte[]> inclusionProof(int index0) {
+    if ((index0 < 0) || (leafCount() <= index0))
+      throw new IllegalArgumentException("Leaf index (" + index0 + ") out of bounds, must be between 0 (inclusive) and " + leafCount() + " (exclusive)");
+
+    final int hlen = node(1).hashval.length;
+    final byte[] buf = new byte[leafrowp * hlen];
+    inclusionProof(index0, buf, 0);
+
+    final ArrayList<byte[]> proof = new ArrayList<>(leafrowp);
+    for (int pos=0; pos < buf.length; pos += hlen)
+      proof.add(Arrays.copyOfRange(buf, pos, pos + hlen));
+    return proof;
+  }
+
+  /**
+   * Writes the inclusion proof of the given leaf (see inclusionProof(index0)) into the given
+   * buffer as contiguous bytes.
+   *
+   * @param index0 must be between 0 (inclusive) and leafCount() (exclusive)
+   * @return the number of bytes written: (levelCount()-1) * hashLength()
+   */
+  public int inclusionProof(int index0, byte[] dst, int off) {
+    if ((index0 < 0) || (leafCount() <= index0))
+      throw new IllegalArgumentException("Leaf index (" + index0 + ") out of bounds, must be between 0 (inclusive) and " + leafCount() + " (exclusive)");
+    final int hlen = node(1).hashval.length;
+    if ((off < 0) || ((dst.length - off) / hlen < leafrowp))
+      throw new IllegalArgumentException("Buffer too small: " + leafrowp + "*" + hlen + " bytes needed at offset " + off + ", buffer length is " + dst.length);
+
+    int pos = off;
+    for (int cnode = leaf2node(index0); 1 < cnode; cnode = parind(cnode)) {
+      final int sib = cnode ^ 1;
+      final Node snode = ((sib <= nodeCount()) ? node(sib) : null);
+      pos += copyHash(((null == snode) ? node(cnode) : snode).hashval, dst, pos);
+    }
+    return pos - off;
+  }
+
+  /**
+   * Verifies an inclusion proof produced by inclusionProof(index0).
+   *
+   * @return true if the given data is the payload of leaf index0 in the tree with the given root hash
+   */
+  public static boolean verifyInclusion(MessageDigest digest, int index0, byte[] data, List<byte[]> proof, String rootHash) {
+    final byte[] root = decodeHash(rootHash);
+    return ((null != root) && verifyInclusion(digest, index0, data, proof, root));
+  }
+
+  /** Same as the above, with the binary root hash (as written by rootHash(byte[],int)). */
+  public static boolean verifyInclusion(MessageDigest digest, int index0, byte[] data, List<byte[]> proof, byte[] rootHash) {
+    digest.update((byte) 0x0);
+    digest.update(data);
+    byte[] hash = digest.digest();
+
+    int pos = index0;
+    for (byte[] sib : proof) {
+      digest.update((byte) 0x1);
+      digest.update((0 == (pos & 1)) ? hash : sib);
+      digest.update((byte) 0x1);
+      digest.update((0 == (pos & 1)) ? sib : hash);
+      hash = digest.digest();
+      pos >>>= 1;
+    }
+    return ((0 == pos) && MessageDigest.isEqual(rootHash, hash));
+  }
+
+  /** Decodes a hex encoded hash value, or returns null if it is not valid hex. */
+  static byte[] decodeHash(String hex) {
+    try {
+      return Hex.decodeHex(hex);
+    } catch (DecoderException e) {
+      return null;
+    }
   }
 
   /**
@@ -301,23 +523,35 @@ public class MerkleTree {
    * @return the number of new data blocks equal to the number of new leaves
    */
   private void appendDataBlocks(byte[] data, int offset, int leafptr) {
-    log.fine("data.length=" + data.length + " offset=" + offset + " leafptr=" + leafptr);
-    datablocks.ensureCapacity(1 + (data.length - offset) / BlockSize);
+    if (log.isLoggable(Level.FINE))
+      log.fine("data.length=" + data.length + " offset=" + offset + " leafptr=" + leafptr);
+    if (keepPayloads)
+      datablocks.ensureCapacity(datablocks.size() + 1 + (data.length - offset) / BlockSize);
 
     for (int i=offset, k=0; i < data.length; i+=BlockSize, ++k) {
-      DataBlock block = new DataBlock();
-      block.payload   = Arrays.copyOfRange(data, i, Math.min(data.length, i+BlockSize));
-      datablocks.add(block);
+      final int end = Math.min(data.length, i+BlockSize);
+
+      // in hash-only mode, only the last block is kept
+      if (keepPayloads || (data.length == end)) {
+        DataBlock block = new DataBlock();
+        block.payload   = Arrays.copyOfRange(data, i, end);
+        if (keepPayloads)
+          datablocks.add(block);
+        this.lastBlock = block;
+      }
+      ++blockCount;
 
       Node leaf = new Node();
-      leaf.hashval = leafHash(block.payload);
-      nodes.set(leafptr + k, leaf);
+      leaf.hashval = leafHash(data, i, end - i);
+      setNode(leafptr + k, leaf);
     }
   }
 
   /** Modifies the tree by inserting the given data chunk at the end. */
   public void append(byte[] data) {
-    log.info("data.length=" + data.length);
+    if (log.isLoggable(Level.INFO))
+      log.info("data.length=" + data.length);
+    this.rootHashHex = null;
 
     if (0 == data.length)
       return;
@@ -326,10 +560,10 @@ public class MerkleTree {
     final int oldNodes = nodeCount();
 
     // number of existing data blocks (equal to the number of leaves)
-    final int oldBlocks = datablocks.size();
+    final int oldBlocks = leafCount();
 
     // last data block
-    final DataBlock lastBlock = datablocks.isEmpty() ? null : datablocks.get(datablocks.size()-1);
+    final DataBlock lastBlock = this.lastBlock;
 
     // number of unused bytes in the last data block
     final int freeBytes = (null == lastBlock) ? 0 : (BlockSize - lastBlock.psize());
@@ -383,7 +617,7 @@ public class MerkleTree {
       // 0-based index of the last leaf (if any)
       final int lastLeaf0 = oldBlocks - 1;
       // 1-based index of the last leaf node (if any)
-      final int lastLeaf1 = datablocks.isEmpty() ? 0 : leaf2node(lastLeaf0);
+      final int lastLeaf1 = isEmpty() ? 0 : leaf2node(lastLeaf0);
 
       // Just append the new leaves to the existing leaf row in the tree - no restructure needed.
       log.fine("new leaves will fit in the last row");
@@ -403,12 +637,12 @@ public class MerkleTree {
           // Free space in the last block is big enough to hold the entire new data
           log.fine("new data fits in the last block, hooray!");
           lastBlock.append(data);
-          recomputeLeafHash(lastLeaf0, true);
+          recomputeLeafHash(lastLeaf0, lastBlock.payload, true);
         } else {
           // Fill up the last block
           log.fine("fill up the last block first");
           lastBlock.append(data, 0, freeBytes);
-          recomputeLeafHash(lastLeaf0, false);
+          recomputeLeafHash(lastLeaf0, lastBlock.payload, false);
           // create and append the remaining new leaves
           log.fine("create the remaining blocks");
           appendDataBlocks(data, freeBytes, leafPtr);
@@ -424,18 +658,21 @@ public class MerkleTree {
     final String linesep = System.lineSeparator();
     final StringBuilder sb = new StringBuilder();
 
-    sb.append("MerkleTree of " + datablocks.size() + " data blocks: [");
-    sb.append(datablocks.stream().mapToInt(l -> l.psize()).mapToObj(String::valueOf).collect(Collectors.joining(",")));
+    sb.append("MerkleTree of " + leafCount() + " data blocks: [");
+    if (keepPayloads)
+      sb.append(datablocks.stream().mapToInt(l -> l.psize()).mapToObj(String::valueOf).collect(Collectors.joining(",")));
+    else
+      sb.append("hash-only" + (isEmpty() ? "" : (", last=" + lastBlock.psize())));
     sb.append("]; leafrowp=" + leafrowp);
     sb.append("; nodes: ");
 
-    if (nodes.isEmpty()) {
+    if (0 == nodeCount()) {
       sb.append("[]");
     } else {
-      for (int i=0; i < nodes.size(); ++i) {
+      for (int i=0; i <= nodeCount(); ++i) {
         if (0 == (i & (i-1)))
           sb.append(linesep);
-        sb.append(" " + (null == nodes.get(i) ? "N" : "."));
+        sb.append(' ').append(((0 == i) || (null == node(i))) ? 'N' : '.');
       }
     }
 
@@ -445,17 +682,33 @@ public class MerkleTree {
     return sb.toString();
   }
 
-  public MerkleTree(MessageDigest digest, int blockSize) {
+  /**
+   * @param keepPayloads if false (hash-only mode), only the payload of the last data block
+   *                     is kept; all the others are discarded once hashed
+   */
+  public MerkleTree(MessageDigest digest, int blockSize, NodeLayout layout, boolean keepPayloads) {
     if (blockSize < 3)
       throw new IllegalArgumentException("Maximal leaf data block size must be at least 3");
 
     this.digest = digest;
     this.BlockSize = blockSize;
+    this.layout = layout;
+    this.keepPayloads = keepPayloads;
     this.nodes.add(null); // 1st slot is empty
 
     log.info("max block size: " + BlockSize);
+    log.info("node layout: " + layout);
+    log.info("keep payloads: " + keepPayloads);
     log.info("max blocks: " + MaxBlocks);
     log.info("hash function: " + digest.getAlgorithm());
     log.info("pow2: " + Arrays.toString(pow2));
   }
+
+  public MerkleTree(MessageDigest digest, int blockSize, NodeLayout layout) {
+    this(digest, blockSize, layout, true);
+  }
+
+  public MerkleTree(MessageDigest digest, int blockSize) {
+    this(digest, blockSize, NodeLayout.BFS);
+  }
 }
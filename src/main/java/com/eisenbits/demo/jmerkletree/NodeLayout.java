@@ -0,0 +1,61 @@
+package com.eisenbits.demo.jmerkletree;
+
+/**
+ * Maps the 1-based node indexes of MerkleTree (breadth-first heap order: the root is 1,
+ * the children of j are 2j and 2j+1) to slots in the nodes array. The tree logic always
+ * uses the heap indexes; only the physical placement of the nodes depends on the layout.
+ *
+ * The placement may depend on the level of the leaves (the tree height): MerkleTree lays
+ * out all the nodes again whenever the tree grows by a level.
+ *
+ * Slot 0 is always the empty slot.
+ */
+public interface NodeLayout {
+
+  /** Returns the slot of the given 1-based node index, in a tree with the leaves on the given level. */
+  int slot(int index1, int leafLevel);
+
+  /**
+   * Returns the size of the nodes array needed to hold nodes 1..nodeCount (including the
+   * empty slot), in a tree with the leaves on the given level. Node nodeCount is the last leaf.
+   */
+  int slotCount(int nodeCount, int leafLevel);
+
+  /** Breadth-first layout: every node index is its own slot. */
+  NodeLayout BFS = new NodeLayout() {
+    @Override
+    public int slot(int index1, int leafLevel) {
+      return index1;
+    }
+
+    @Override
+    public int slotCount(int nodeCount, int leafLevel) {
+      return nodeCount + 1;
+    }
+
+    @Override
+    public String toString() {
+      return "BFS layout";
+    }
+  };
+
+  /**
+   * Returns a blocked layout: the levels are grouped by the given height, starting from the
+   * leaves, and every subtree of such a group is stored contiguously (in breadth-first order).
+   * The groups are stored from the root downwards. A leaf-to-root walk then reads one stretch
+   * of slots per height levels, instead of one distant slot per level.
+   *
+   * Only the node references in the nodes array are reordered: the nodes and their hash values
+   * are separate heap objects, wherever the allocator put them. So this improves the locality
+   * of the nodes array only, not of the hash values.
+   *
+   * The nodes array holds at most about 2^height + 2*leafCount/2^(height-1) slots more than
+   * there are nodes (the unused slots of the partially filled rightmost subtrees and of the
+   * levels above the bottom group), and any number of leaves up to MerkleTree.MaxBlocks fits.
+   *
+   * @param height block height, between 1 and 15
+   */
+  static NodeLayout blocked(int height) {
+    return new BlockedNodeLayout(height);
+  }
+}
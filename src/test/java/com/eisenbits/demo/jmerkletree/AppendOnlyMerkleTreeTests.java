@@ -0,0 +1,212 @@
+package com.eisenbits.demo.jmerkletree;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+class AppendOnlyMerkleTreeTests {
+
+  private static MessageDigest makeDigest() throws NoSuchAlgorithmException {
+    return MessageDigest.getInstance("SHA-256");
+  }
+
+  private static byte[] makeData(int length) {
+    byte[] data = new byte[length];
+    for (int i=0; i < length; ++i)
+      data[i] = (byte) (7 * i + 1);
+    return data;
+  }
+
+  @Test
+  void emptyTree() throws NoSuchAlgorithmException {
+    AppendOnlyMerkleTree at = new AppendOnlyMerkleTree(makeDigest(), 5);
+    assertTrue(at.isEmpty());
+    assertEquals(0, at.leafCount());
+    assertThrows(IllegalStateException.class, () -> at.rootHash());
+  }
+
+  @Test
+  void smallTree() throws NoSuchAlgorithmException {
+    AppendOnlyMerkleTree at = new AppendOnlyMerkleTree(makeDigest(), 5);
+
+    at.append(new byte[]{1,2,3,4,5,6,7});
+    assertEquals(2, at.leafCount());
+    assertEquals("f16a90becd1fb59e19e7294e2fc0f549bba07bec57932ab482b2e88c56d84964", at.rootHash());
+
+    at.append(new byte[]{8,9});
+    assertEquals(2, at.leafCount());
+    assertEquals("23fe91c8398c7a228f2c35a0b9021257f38907d3932ff3e808c61c0c836976b7", at.rootHash());
+
+    // the encoding is cached until the next append
+    assertSame(at.rootHash(), at.rootHash());
+    at.append(new byte[]{});
+    assertSame(at.rootHash(), at.rootHash());
+    at.append(new byte[]{10});
+    assertEquals(2, at.leafCount());
+    assertNotEquals("23fe91c8398c7a228f2c35a0b9021257f38907d3932ff3e808c61c0c836976b7", at.rootHash());
+  }
+
+  @Test
+  void sameRootAsMerkleTree() throws NoSuchAlgorithmException {
+    MessageDigest digest = makeDigest();
+
+    for (int length=1; length <= 100; ++length) {
+      final byte[] data = makeData(length);
+
+      MerkleTree mt = new MerkleTree(digest, 3);
+      mt.append(data);
+
+      AppendOnlyMerkleTree at1 = new AppendOnlyMerkleTree(digest, 3);
+      at1.append(data);
+      assertEquals(mt.leafCount(), at1.leafCount());
+      assertEquals(mt.rootHash(), at1.rootHash(), "length=" + length);
+
+      byte[] root1 = new byte[32], root2 = new byte[32];
+      assertEquals(32, mt.rootHash(root1, 0));
+      assertEquals(32, at1.rootHash(root2, 0));
+      assertArrayEquals(root1, root2);
+
+      // byte by byte
+      AppendOnlyMerkleTree at2 = new AppendOnlyMerkleTree(digest, 3);
+      MerkleTree mt2 = new MerkleTree(digest, 3);
+      for (int i=0; i < length; ++i) {
+        at2.append(new byte[]{data[i]});
+        mt2.append(new byte[]{data[i]});
+        assertEquals(mt2.rootHash(), at2.rootHash(), "length=" + length + " i=" + i);
+      }
+      assertEquals(mt.rootHash(), at2.rootHash(), "length=" + length);
+
+      // uneven chunks
+      AppendOnlyMerkleTree at3 = new AppendOnlyMerkleTree(digest, 3);
+      for (int i=0, c=1; i < length; i+=c, c=(c % 7) + 1)
+        at3.append(Arrays.copyOfRange(data, i, Math.min(length, i+c)));
+      assertEquals(mt.rootHash(), at3.rootHash(), "length=" + length);
+    }
+  }
+
+  @Test
+  void consistencyProofs() throws NoSuchAlgorithmException {
+    MessageDigest digest = makeDigest();
+    final String[] roots = new String[40];
+
+    AppendOnlyMerkleTree at = new AppendOnlyMerkleTree(digest, 3, true);
+    for (int n=1; n < roots.length; ++n) {
+      at.append(new byte[]{(byte) n, 2, 3});
+      roots[n] = at.rootHash();
+
+      for (int m=1; m <= n; ++m) {
+        List<byte[]> proof = at.consistencyProof(m);
+        assertTrue(AppendOnlyMerkleTree.verifyConsistency(digest, m, roots[m], n, roots[n], proof), "m=" + m + " n=" + n);
+        if (m < n)
+          assertFalse(AppendOnlyMerkleTree.verifyConsistency(digest, m, roots[m+1], n, roots[n], proof), "m=" + m + " n=" + n);
+      }
+    }
+  }
+
+  @Test
+  void consistencyProofsLargeLog() throws NoSuchAlgorithmException {
+    MessageDigest digest = makeDigest();
+    final int[] sizes = {1, 2, 3, 255, 256, 257, 1000, 2047, 2048, 3001, 4095, 4096, 4321};
+    final String[] roots = new String[sizes.length];
+
+    AppendOnlyMerkleTree at = new AppendOnlyMerkleTree(digest, 3, true);
+    MerkleTree mt = new MerkleTree(digest, 3);
+    for (int s=0, n=0; s < sizes.length; ++s) {
+      for (; n < sizes[s]; ++n) {
+        final byte[] block = {(byte) n, (byte) (n >> 8), 7};
+        at.append(block);
+        mt.append(block);
+      }
+      roots[s] = at.rootHash();
+      assertEquals(mt.rootHash(), roots[s], "n=" + n);
+    }
+
+    // a half-filled last block is part of the current tree only
+    at.append(new byte[]{1});
+    final String root = at.rootHash();
+    final int n = at.leafCount();
+
+    for (int s=0; s < sizes.length; ++s) {
+      List<byte[]> proof = at.consistencyProof(sizes[s]);
+      assertTrue(proof.size() <= 2 * Integer.SIZE, "size=" + sizes[s]);
+      assertTrue(AppendOnlyMerkleTree.verifyConsistency(digest, sizes[s], roots[s], n, root, proof), "size=" + sizes[s]);
+      if (0 < s)
+        assertFalse(AppendOnlyMerkleTree.verifyConsistency(digest, sizes[s], roots[s-1], n, root, proof), "size=" + sizes[s]);
+    }
+  }
+
+  @Test
+  void consistencyProofPartialOldRoot() throws NoSuchAlgorithmException {
+    MessageDigest digest = makeDigest();
+
+    AppendOnlyMerkleTree at = new AppendOnlyMerkleTree(digest, 3, true);
+    at.append(new byte[]{1,2,3,4});
+    assertEquals(2, at.leafCount());
+    final String partialRoot = at.rootHash();
+    at.append(new byte[]{5,6});
+    final String fullRoot = at.rootHash();
+    at.append(new byte[]{7,8,9});
+    final String root = at.rootHash();
+
+    // the old root with the complete last block verifies, the one with the incomplete block does not
+    List<byte[]> proof = at.consistencyProof(2);
+    assertTrue(AppendOnlyMerkleTree.verifyConsistency(digest, 2, fullRoot, 3, root, proof));
+    assertFalse(AppendOnlyMerkleTree.verifyConsistency(digest, 2, partialRoot, 3, root, proof));
+  }
+
+  @Test
+  void consistencyProofTampered() throws NoSuchAlgorithmException {
+    MessageDigest digest = makeDigest();
+
+    AppendOnlyMerkleTree at = new AppendOnlyMerkleTree(digest, 3, true);
+    at.append(makeData(15));
+    final String oldRoot = at.rootHash();
+    at.append(makeData(21));
+    final String newRoot = at.rootHash();
+
+    List<byte[]> proof = at.consistencyProof(5);
+    assertTrue(AppendOnlyMerkleTree.verifyConsistency(digest, 5, oldRoot, 12, newRoot, proof));
+
+    proof.get(proof.size() - 1)[0] ^= 1;
+    assertFalse(AppendOnlyMerkleTree.verifyConsistency(digest, 5, oldRoot, 12, newRoot, proof));
+    assertFalse(AppendOnlyMerkleTree.verifyConsistency(digest, 5, oldRoot, 12, newRoot, proof.subList(0, proof.size() - 1)));
+  }
+
+  @Test
+  void consistencyProofBinaryRoots() throws NoSuchAlgorithmException {
+    MessageDigest digest = makeDigest();
+
+    AppendOnlyMerkleTree at = new AppendOnlyMerkleTree(digest, 3, true);
+    at.append(makeData(15));
+    final byte[] oldRoot = new byte[32];
+    at.rootHash(oldRoot, 0);
+    at.append(makeData(21));
+    final byte[] newRoot = new byte[32];
+    at.rootHash(newRoot, 0);
+
+    List<byte[]> proof = at.consistencyProof(5);
+    assertTrue(AppendOnlyMerkleTree.verifyConsistency(digest, 5, oldRoot, 12, newRoot, proof));
+    assertFalse(AppendOnlyMerkleTree.verifyConsistency(digest, 5, newRoot, 12, newRoot, proof));
+    assertFalse(AppendOnlyMerkleTree.verifyConsistency(digest, 5, oldRoot, 12, oldRoot, proof));
+
+    // a malformed hex root does not verify
+    assertFalse(AppendOnlyMerkleTree.verifyConsistency(digest, 5, "0", 12, at.rootHash(), proof));
+  }
+
+  @Test
+  void consistencyProofRequiresLeafHashes() throws NoSuchAlgorithmException {
+    AppendOnlyMerkleTree at = new AppendOnlyMerkleTree(makeDigest(), 3);
+    at.append(makeData(10));
+    assertThrows(IllegalStateException.class, () -> at.consistencyProof(1));
+  }
+}
@@ -0,0 +1,88 @@
+package com.eisenbits.demo.jmerkletree;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+/**
+ * A simple command-line benchmark comparing the node layouts: average latency of updateLeaf
+ * and inclusionProof on random leaves.
+ *
+ * Usage: MerkleTreeBenchmark [leafCount...]
+ *
+ * The tree has about 2*leafCount nodes. The default leaf counts give 10^6 .. 4*10^6 nodes.
+ * All the layouts accept up to MerkleTree.MaxBlocks leaves, so 10^9 nodes are reachable with
+ * leafCount=500000000, given a heap (-Xmx) of roughly 200 bytes per leaf with 32-byte blocks,
+ * i.e. about 100 GB.
+ *
+ * The layouts only reorder the node references in the nodes array (see NodeLayout.blocked),
+ * so this measures the effect of that alone.
+ */
+public class MerkleTreeBenchmark {
+
+  private static final int BlockSize = 32;
+  private static final int Chunk = 1 << 16;  // blocks per append
+  private static final int Ops = 200000;
+
+  private static final NodeLayout[] layouts = { NodeLayout.BFS, NodeLayout.blocked(4), NodeLayout.blocked(8) };
+
+  private static MerkleTree build(MessageDigest digest, NodeLayout layout, int leafCount) {
+    MerkleTree mt = new MerkleTree(digest, BlockSize, layout);
+    byte[] data = new byte[Chunk * BlockSize];
+    Random rnd = new Random(1);
+
+    for (int n=0; n < leafCount; n += Chunk) {
+      rnd.nextBytes(data);
+      mt.append((leafCount - n < Chunk) ? Arrays.copyOf(data, (leafCount - n) * BlockSize) : data);
+    }
+    return mt;
+  }
+
+  private static void run(MessageDigest digest, NodeLayout layout, int leafCount) {
+    System.gc();
+    final MerkleTree mt = build(digest, layout, leafCount);
+    final byte[] payload = new byte[BlockSize];
+    final Random rnd = new Random(2);
+    long sink = 0;
+
+    // warm-up
+    for (int i=0; i < Ops; ++i) {
+      mt.updateLeaf(rnd.nextInt(leafCount), payload);
+      sink += mt.inclusionProof(rnd.nextInt(leafCount)).size();
+    }
+
+    long t0 = System.nanoTime();
+    for (int i=0; i < Ops; ++i) {
+      payload[0] = (byte) i;
+      mt.updateLeaf(rnd.nextInt(leafCount), payload);
+    }
+    final long updateNs = (System.nanoTime() - t0) / Ops;
+
+    t0 = System.nanoTime();
+    for (int i=0; i < Ops; ++i)
+      sink += mt.inclusionProof(rnd.nextInt(leafCount)).size();
+    final long proofNs = (System.nanoTime() - t0) / Ops;
+
+    System.out.println(String.format("%-22s leaves=%-10d updateLeaf=%6d ns  inclusionProof=%6d ns  (%d)",
+                                     layout, leafCount, updateNs, proofNs, sink));
+  }
+
+  public static void main(String[] args) throws NoSuchAlgorithmException {
+    // logging would dominate the measurements
+    LogManager.getLogManager().reset();
+    Logger.getLogger(MerkleTree.class.getName()).setLevel(Level.OFF);
+
+    final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    final int[] sizes = new int[args.length];
+    for (int i=0; i < args.length; ++i)
+      sizes[i] = Integer.parseInt(args[i]);
+
+    for (int leafCount : ((0 == args.length) ? new int[]{ 1 << 19, 1 << 21 } : sizes))
+      for (NodeLayout layout : layouts)
+        run(digest, layout, leafCount);
+  }
+}
@@ -2,10 +2,18 @@ package com.eisenbits.demo.jmerkletree;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
+import org.apache.commons.codec.binary.Hex;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import org.junit.jupiter.api.Test;
 
 class MerkleTreeDemoTests {
@@ -115,7 +123,7 @@ class MerkleTreeDemoTests {
     mt.append(new byte[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16,17,18,19,20});
     assertFalse(mt.isEmpty());
     assertEquals(9, mt.leafCount());
-    assertEquals("19db03ef42128e32a312d5dcd11a3ae722e3c98c109e306bfdcf8f7d69975619", mt.rootHash());
+    assertEquals("c4f71db261dc87286a45f4def78f434b64d73cb5e07a4885eaf0925b427bbe1b", mt.rootHash());
   }
 
   @Test
@@ -229,6 +237,227 @@ class MerkleTreeDemoTests {
 
     mt.append(new byte[]{8,9,10,11,12});
     assertEquals(9, mt.leafCount());
-    assertEquals("f7ededea0ee66f59fb7a807333c5895c15074e602428512821029847dda1b51d", mt.rootHash());
+    assertEquals("33036db2c3fb72573c06dff74c8e3cc987adf0420141f5d7b7d5cf0d033c0541", mt.rootHash());
+  }
+
+  @Test
+  void blockedLayoutSlots() {
+    for (int height=1; height <= 8; ++height) {
+      NodeLayout layout = NodeLayout.blocked(height);
+
+      for (int leafLevel=0; leafLevel <= 11; ++leafLevel) {
+        final int lo = (0 == leafLevel) ? 1 : (1 << (leafLevel - 1)) + 1;
+        for (int leaves=lo; leaves <= (1 << leafLevel); leaves += 1 + leaves / 7) {
+          final int nodeCount = (1 << leafLevel) + leaves - 1;
+          final int slotCount = layout.slotCount(nodeCount, leafLevel);
+          Set<Integer> slots = new HashSet<>();
+          int nodes = 0;
+
+          // all the nodes of the tree: level l holds ceil(leaves / 2^(leafLevel-l)) nodes
+          for (int level=0; level <= leafLevel; ++level) {
+            for (int i=0; i <= ((leaves - 1) >> (leafLevel - level)); ++i, ++nodes) {
+              final int slot = layout.slot((1 << level) + i, leafLevel);
+              assertTrue((1 <= slot) && (slot < slotCount), "height=" + height + " leaves=" + leaves);
+              assertTrue(slots.add(slot), "height=" + height + " leaves=" + leaves);
+            }
+          }
+
+          // unused slots: partially filled last blocks and the levels above the bottom group
+          assertTrue(slotCount - 1 - nodes <= (1 << height) + 4 * leaves / (1 << height),
+                     "height=" + height + " leaves=" + leaves + " nodes=" + nodes + " slots=" + slotCount);
+        }
+      }
+
+      // the biggest tree must fit as well
+      final int leafLevel = Integer.SIZE - Integer.numberOfLeadingZeros(MerkleTree.MaxBlocks - 1);
+      assertTrue(0 < layout.slotCount((1 << leafLevel) + MerkleTree.MaxBlocks - 1, leafLevel));
+    }
+  }
+
+  @Test
+  void blockedLayoutSameRoot() throws NoSuchAlgorithmException {
+    MessageDigest digest = makeDigest();
+
+    for (int height=1; height <= 5; ++height) {
+      MerkleTree mt = new MerkleTree(digest, 3);
+      MerkleTree bt = new MerkleTree(digest, 3, NodeLayout.blocked(height));
+
+      for (int n=1; n <= 40; ++n) {
+        byte[] data = new byte[n];
+        Arrays.fill(data, (byte) n);
+        mt.append(data);
+        bt.append(data);
+        assertEquals(mt.leafCount(), bt.leafCount());
+        assertEquals(mt.rootHash(), bt.rootHash(), "height=" + height + " n=" + n);
+      }
+
+      mt.updateLeaf(17, new byte[]{1,2,3});
+      bt.updateLeaf(17, new byte[]{1,2,3});
+      assertEquals(mt.rootHash(), bt.rootHash(), "height=" + height);
+    }
+  }
+
+  @Test
+  void blockedLayoutGrowsPastBlockRows() throws NoSuchAlgorithmException {
+    MessageDigest digest = makeDigest();
+
+    for (int height : new int[]{4, 8}) {
+      MerkleTree mt = new MerkleTree(digest, 3);
+      MerkleTree bt = new MerkleTree(digest, 3, NodeLayout.blocked(height), false);
+
+      // leaf levels 0 .. 11: the levels get regrouped at every growth, crossing group boundaries
+      for (int n=1; mt.leafCount() < 1500; n = 2*n + 1) {
+        byte[] data = new byte[3*n + 1];
+        for (int i=0; i < data.length; ++i)
+          data[i] = (byte) (n + i);
+        mt.append(data);
+        bt.append(data);
+        assertEquals(mt.leafCount(), bt.leafCount());
+        assertEquals(mt.rootHash(), bt.rootHash(), "height=" + height + " leaves=" + mt.leafCount());
+      }
+
+      for (int i=0; i < mt.leafCount(); i += 97) {
+        mt.updateLeaf(i, new byte[]{(byte) i});
+        bt.updateLeaf(i, new byte[]{(byte) i});
+        assertEquals(mt.rootHash(), bt.rootHash(), "height=" + height + " i=" + i);
+        assertTrue(MerkleTree.verifyInclusion(digest, i, new byte[]{(byte) i}, bt.inclusionProof(i), mt.rootHash()));
+      }
+    }
+  }
+
+  @Test
+  void inclusionProofs() throws NoSuchAlgorithmException {
+    MessageDigest digest = makeDigest();
+
+    for (int n=1; n <= 20; ++n) {
+      MerkleTree mt = new MerkleTree(digest, 3, NodeLayout.blocked(2));
+      byte[] data = new byte[3 * n];
+      for (int i=0; i < data.length; ++i)
+        data[i] = (byte) i;
+      mt.append(data);
+
+      for (int i=0; i < n; ++i) {
+        byte[] payload = Arrays.copyOfRange(data, 3*i, 3*i+3);
+        List<byte[]> proof = mt.inclusionProof(i);
+        assertTrue(MerkleTree.verifyInclusion(digest, i, payload, proof, mt.rootHash()), "n=" + n + " i=" + i);
+        assertFalse(MerkleTree.verifyInclusion(digest, i, new byte[]{9,9,9}, proof, mt.rootHash()), "n=" + n + " i=" + i);
+        if ((i ^ 1) < n)
+          assertFalse(MerkleTree.verifyInclusion(digest, i ^ 1, payload, proof, mt.rootHash()), "n=" + n + " i=" + i);
+      }
+    }
+
+    MerkleTree mt = new MerkleTree(digest, 3);
+    mt.append(new byte[]{1,2,3});
+    assertThrows(IllegalArgumentException.class, () -> mt.inclusionProof(1));
+  }
+
+  @Test
+  void inclusionProofsBinaryRoot() throws NoSuchAlgorithmException {
+    MessageDigest digest = makeDigest();
+
+    MerkleTree mt = new MerkleTree(digest, 3);
+    mt.append(new byte[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,15});
+    byte[] root = new byte[mt.hashLength()];
+    mt.rootHash(root, 0);
+
+    List<byte[]> proof = mt.inclusionProof(2);
+    assertTrue(MerkleTree.verifyInclusion(digest, 2, new byte[]{7,8,9}, proof, root));
+    assertFalse(MerkleTree.verifyInclusion(digest, 2, new byte[]{7,8,0}, proof, root));
+    assertFalse(MerkleTree.verifyInclusion(digest, 2, new byte[]{7,8,9}, proof, Arrays.copyOf(root, root.length - 1)));
+
+    // the hex root is decoded, and a malformed one does not verify
+    assertTrue(MerkleTree.verifyInclusion(digest, 2, new byte[]{7,8,9}, proof, mt.rootHash().toUpperCase()));
+    assertFalse(MerkleTree.verifyInclusion(digest, 2, new byte[]{7,8,9}, proof, "xyz"));
+  }
+
+  @Test
+  void hashOnlySameRoot() throws NoSuchAlgorithmException {
+    MessageDigest digest = makeDigest();
+    MerkleTree mt = new MerkleTree(digest, 3);
+    MerkleTree ht = new MerkleTree(digest, 3, NodeLayout.BFS, false);
+    assertTrue(ht.isEmpty());
+
+    for (int n=1; n <= 30; ++n) {
+      byte[] data = new byte[n % 8];
+      Arrays.fill(data, (byte) n);
+      mt.append(data);
+      ht.append(data);
+      assertEquals(mt.leafCount(), ht.leafCount());
+      if (! mt.isEmpty())
+        assertEquals(mt.rootHash(), ht.rootHash(), "n=" + n);
+    }
+
+    for (int i=0; i < mt.leafCount(); i+=3) {
+      mt.updateLeaf(i, new byte[]{(byte) i});
+      ht.updateLeaf(i, new byte[]{(byte) i});
+      assertEquals(mt.rootHash(), ht.rootHash(), "i=" + i);
+    }
+
+    // the last block is kept and can still grow
+    mt.updateLeaf(mt.leafCount() - 1, new byte[]{7});
+    ht.updateLeaf(ht.leafCount() - 1, new byte[]{7});
+    mt.append(new byte[]{8,9,10});
+    ht.append(new byte[]{8,9,10});
+    assertEquals(mt.leafCount(), ht.leafCount());
+    assertEquals(mt.rootHash(), ht.rootHash());
+  }
+
+  @Test
+  void binaryExport() throws NoSuchAlgorithmException {
+    MessageDigest digest = makeDigest();
+    MerkleTree mt = new MerkleTree(digest, 3);
+    mt.append(new byte[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,15});
+    assertEquals(5, mt.leafCount());
+    assertEquals(4, mt.levelCount());
+    assertEquals(32, mt.hashLength());
+
+    byte[] buf = new byte[2 + 5 * 32];
+    assertEquals(32, mt.rootHash(buf, 2));
+    assertEquals(mt.rootHash(), Hex.encodeHexString(Arrays.copyOfRange(buf, 2, 34)));
+    assertThrows(IllegalArgumentException.class, () -> mt.rootHash(new byte[31], 0));
+
+    // levels: 1, 2, 3, 5 nodes
+    byte[] root = Arrays.copyOfRange(buf, 2, 34);
+    assertEquals(32, mt.exportLevel(0, buf, 0));
+    assertArrayEquals(root, Arrays.copyOf(buf, 32));
+    int[] sizes = {1, 2, 3, 5};
+    for (int level=0; level < mt.levelCount(); ++level) {
+      assertEquals(sizes[level], mt.levelSize(level));
+      assertEquals(sizes[level] * 32, mt.exportLevel(level, buf, 1));
+    }
+    assertThrows(IllegalArgumentException.class, () -> mt.exportLevel(3, new byte[4 * 32], 0));
+    assertThrows(IllegalArgumentException.class, () -> mt.levelSize(4));
+
+    // leaf level: hash of each payload
+    for (int i=0; i < 5; ++i) {
+      digest.update((byte) 0x0);
+      digest.update(new byte[]{(byte) (3*i+1), (byte) (3*i+2), (byte) (3*i+3)});
+      assertArrayEquals(digest.digest(), Arrays.copyOfRange(buf, 1 + 32*i, 1 + 32*(i+1)));
+    }
+
+    // proof
+    List<byte[]> proof = mt.inclusionProof(4);
+    byte[] pbuf = new byte[proof.size() * 32];
+    assertEquals(pbuf.length, mt.inclusionProof(4, pbuf, 0));
+    for (int i=0; i < proof.size(); ++i)
+      assertArrayEquals(proof.get(i), Arrays.copyOfRange(pbuf, 32*i, 32*(i+1)));
+
+    // a short buffer or a bad offset is rejected before anything gets written
+    byte[] sbuf = new byte[pbuf.length - 1];
+    assertThrows(IllegalArgumentException.class, () -> mt.inclusionProof(4, sbuf, 0));
+    assertArrayEquals(new byte[sbuf.length], sbuf);
+    assertThrows(IllegalArgumentException.class, () -> mt.inclusionProof(4, pbuf, 1));
+    assertThrows(IllegalArgumentException.class, () -> mt.inclusionProof(4, pbuf, -1));
+    MerkleTree one = new MerkleTree(digest, 3);
+    one.append(new byte[]{1});
+    assertEquals(0, one.inclusionProof(0, new byte[0], 0));
+    assertThrows(IllegalArgumentException.class, () -> one.inclusionProof(0, new byte[0], -1));
+
+    // the cached root is refreshed after a modification
+    final String oldRoot = mt.rootHash();
+    mt.updateLeaf(4, new byte[]{0});
+    assertFalse(oldRoot.equals(mt.rootHash()));
+    mt.rootHash(buf, 0);
+    assertEquals(mt.rootHash(), Hex.encodeHexString(Arrays.copyOf(buf, 32)));
   }
 }